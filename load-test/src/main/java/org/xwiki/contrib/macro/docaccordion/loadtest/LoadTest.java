@@ -0,0 +1,462 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.macro.docaccordion.loadtest;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * Load test of the Document Accordion Macro against a running XWiki instance.
+ * <p>
+ * For each scenario of the configuration, the test seeds a space of documents through the REST API (document count,
+ * nested spaces, rights pattern, application objects) and a page displaying them with the macro. Simulated viewers
+ * then render that page and expand some of its accordions concurrently. The throughput and latency percentiles are
+ * reported per scenario and request kind, along with the number of database statements read from the Hibernate
+ * statistics over JMX when configured.
+ * <p>
+ * Usage: {@code mvn package exec:java -Dexec.args="[configuration file] [seed|run|all]"} from the {@code load-test}
+ * directory (requires Java 11 or later).
+ */
+public class LoadTest
+{
+    private static final String RENDER = "render";
+
+    private static final String EXPAND = "expand";
+
+    private static final String CHILDREN = "children";
+
+    private static final Pattern PANEL_URL =
+        Pattern.compile("(rel|data-children)=\"([^\"]*(?:/get/|xpage=)[^\"]*)\"");
+
+    private final Properties configuration;
+
+    private final HttpClient client;
+
+    private final String baseURL;
+
+    private final String restURL;
+
+    private final List<String> viewers = new ArrayList<>();
+
+    /**
+     * @param configuration the load test configuration
+     */
+    public LoadTest(Properties configuration)
+    {
+        this.configuration = configuration;
+        this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        this.baseURL = configuration.getProperty("xwiki.url", "http://localhost:8080/xwiki").replaceAll("/$", "");
+        this.restURL =
+            String.format("%s/rest/wikis/%s", this.baseURL, configuration.getProperty("xwiki.wiki", "xwiki"));
+    }
+
+    /**
+     * @param args the configuration file and the phase to execute
+     * @throws Exception if the load test fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Properties configuration = new Properties();
+        String configurationFile = args.length > 0 ? args[0] : "scenarios.properties";
+        try (InputStream input = new FileInputStream(configurationFile)) {
+            configuration.load(input);
+        }
+        String phase = args.length > 1 ? args[1] : "all";
+
+        LoadTest loadTest = new LoadTest(configuration);
+        loadTest.initViewers("seed".equals(phase) || "all".equals(phase));
+        for (String scenario : loadTest.getList("scenarios")) {
+            if (!"run".equals(phase)) {
+                loadTest.seed(scenario);
+            }
+            if (!"seed".equals(phase)) {
+                loadTest.run(scenario);
+            }
+        }
+    }
+
+    // Seeding
+
+    private void initViewers(boolean create) throws Exception
+    {
+        int userCount = getInt("users.count", 0);
+        String password = this.configuration.getProperty("users.password", "loadtest");
+        for (int i = 1; i <= userCount; i++) {
+            String userName = String.format("LoadTestUser%d", i);
+            if (create) {
+                createPage("XWiki", userName, userName, "");
+                Map<String, String> properties = new LinkedHashMap<>();
+                properties.put("first_name", "Load");
+                properties.put("last_name", String.format("Test %d", i));
+                properties.put("password", password);
+                addObject("XWiki", userName, "XWiki.XWikiUsers", properties);
+                Map<String, String> member = new LinkedHashMap<>();
+                member.put("member", String.format("XWiki.%s", userName));
+                addObject("XWiki", "XWikiAllGroup", "XWiki.XWikiGroups", member);
+            }
+            this.viewers.add(authorization(userName, password));
+        }
+        if (this.viewers.isEmpty() || getBoolean("users.guest", true)) {
+            // Guest viewer
+            this.viewers.add(null);
+        }
+    }
+
+    private void seed(String scenario) throws Exception
+    {
+        int documents = getInt(scenario, "documents", 100);
+        int nestedSpaces = getInt(scenario, "nestedSpaces", 0);
+        String rights = getString(scenario, "rights", "public");
+        String xclass = getString(scenario, "xclass", "");
+        String dataSpace = String.format("LoadTest.%s.Data", scenario);
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < documents; i++) {
+            // Spread the documents between the data space and its nested spaces
+            String space = dataSpace;
+            if (nestedSpaces > 0 && i % (nestedSpaces + 1) != 0) {
+                space = String.format("%s.Nested%d", dataSpace, i % (nestedSpaces + 1));
+            }
+            String page = String.format("Document%05d", i);
+            createPage(space, page, String.format("%s document %d", scenario, i), lorem(i));
+
+            if (!xclass.isEmpty()) {
+                Map<String, String> properties = new LinkedHashMap<>();
+                for (String property : getList(scenario + ".properties")) {
+                    String[] nameValue = property.split("=", 2);
+                    properties.put(nameValue[0], String.format(nameValue[1], i));
+                }
+                addObject(space, page, xclass, properties);
+            }
+
+            // One document out of "restrictEvery" can only be viewed by the administrator
+            if ("mixed".equals(rights) && i % getInt(scenario, "restrictEvery", 5) == 0) {
+                Map<String, String> right = new LinkedHashMap<>();
+                right.put("users", String.format("XWiki.%s", this.configuration.getProperty("admin.user", "Admin")));
+                right.put("levels", "view");
+                right.put("allow", "1");
+                addObject(space, page, "XWiki.XWikiRights", right);
+            }
+        }
+
+        // The whole space can only be viewed by registered users
+        if ("restricted".equals(rights)) {
+            createPage(dataSpace, "WebPreferences", "", "");
+            Map<String, String> right = new LinkedHashMap<>();
+            right.put("groups", "XWiki.XWikiAllGroup");
+            right.put("levels", "view");
+            right.put("allow", "1");
+            addObject(dataSpace, "WebPreferences", "XWiki.XWikiGlobalRights", right);
+        }
+
+        String macroParameters = getString(scenario, "macro", "");
+        createPage(String.format("LoadTest.%s", scenario), "WebHome", String.format("Load test %s", scenario),
+            String.format("{{docaccordion space=\"%s\" %s/}}", dataSpace, macroParameters));
+
+        System.out.printf("Seeded scenario [%s]: %d documents in %d ms%n", scenario, documents,
+            System.currentTimeMillis() - start);
+    }
+
+    private void createPage(String space, String page, String title, String content) throws Exception
+    {
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("title", title);
+        form.put("content", content);
+        send(HttpRequest.newBuilder(URI.create(pageURL(space, page))).PUT(formBody(form)), true);
+    }
+
+    private void addObject(String space, String page, String className, Map<String, String> properties)
+        throws Exception
+    {
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("className", className);
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            form.put("property#" + property.getKey(), property.getValue());
+        }
+        send(HttpRequest.newBuilder(URI.create(pageURL(space, page) + "/objects")).POST(formBody(form)), true);
+    }
+
+    private void send(HttpRequest.Builder request, boolean admin) throws Exception
+    {
+        request.header("Content-Type", "application/x-www-form-urlencoded");
+        if (admin) {
+            request.header("Authorization", authorization(this.configuration.getProperty("admin.user", "Admin"),
+                this.configuration.getProperty("admin.password", "admin")));
+        }
+        HttpResponse<String> response = this.client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 400) {
+            throw new IOException(String.format("Request [%s] failed with status [%d]: %s", response.uri(),
+                response.statusCode(), response.body()));
+        }
+    }
+
+    private String pageURL(String space, String page)
+    {
+        StringBuilder url = new StringBuilder(this.restURL);
+        for (String spaceName : space.split("\\.")) {
+            url.append("/spaces/").append(encode(spaceName).replace("+", "%20"));
+        }
+        return url.append("/pages/").append(encode(page).replace("+", "%20")).toString();
+    }
+
+    private static HttpRequest.BodyPublisher formBody(Map<String, String> form)
+    {
+        StringBuilder body = new StringBuilder();
+        for (Map.Entry<String, String> field : form.entrySet()) {
+            body.append(body.length() > 0 ? "&" : "").append(encode(field.getKey())).append('=')
+                .append(encode(field.getValue()));
+        }
+        return HttpRequest.BodyPublishers.ofString(body.toString());
+    }
+
+    private static String lorem(int index)
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            content.append(String.format("Paragraph %d of document %d. Lorem ipsum dolor sit amet, consectetur"
+                + " adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.%n%n", i,
+                index));
+        }
+        return content.toString();
+    }
+
+    // Load
+
+    private void run(String scenario) throws Exception
+    {
+        int threads = getInt(scenario, "threads", getInt("threads", 10));
+        long warmup = TimeUnit.SECONDS.toMillis(getInt(scenario, "warmup", getInt("warmup", 10)));
+        long duration = TimeUnit.SECONDS.toMillis(getInt(scenario, "duration", getInt("duration", 60)));
+        int expand = getInt(scenario, "expand", getInt("expand", 3));
+        String pageURL = String.format("%s/bin/get/LoadTest/%s/", this.baseURL, encode(scenario));
+
+        Map<String, ConcurrentLinkedQueue<Long>> latencies = new LinkedHashMap<>();
+        for (String kind : new String[] {RENDER, EXPAND, CHILDREN}) {
+            latencies.put(kind, new ConcurrentLinkedQueue<>());
+        }
+        AtomicLong errors = new AtomicLong();
+
+        long start = System.currentTimeMillis();
+        long measureStart = start + warmup;
+        long end = measureStart + duration;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            final String viewer = this.viewers.get(t % this.viewers.size());
+            executor.submit(() -> {
+                while (System.currentTimeMillis() < end) {
+                    boolean measured = System.currentTimeMillis() >= measureStart;
+                    try {
+                        String page = get(pageURL, viewer, measured ? latencies.get(RENDER) : null);
+                        List<String[]> panels = findPanelURLs(page);
+                        Collections.shuffle(panels);
+                        // Simulate a viewer expanding some accordions of the page
+                        for (String[] panel : panels.subList(0, Math.min(expand, panels.size()))) {
+                            String kind = "data-children".equals(panel[0]) ? CHILDREN : EXPAND;
+                            get(panel[1], viewer, measured ? latencies.get(kind) : null);
+                        }
+                    } catch (Exception e) {
+                        if (measured) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    // Think time
+                    sleep(getInt("thinkTime", 500));
+                }
+                return null;
+            });
+        }
+        executor.shutdown();
+
+        // Count the database statements of the measured period only
+        sleep(measureStart - System.currentTimeMillis());
+        long statementsStart = readStatementCount();
+        executor.awaitTermination(end - start + TimeUnit.MINUTES.toMillis(5), TimeUnit.MILLISECONDS);
+        long statements = statementsStart < 0 ? -1 : readStatementCount() - statementsStart;
+
+        report(scenario, threads, duration, latencies, errors.get(), statements);
+    }
+
+    private String get(String url, String viewer, ConcurrentLinkedQueue<Long> latencies) throws Exception
+    {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(60)).GET();
+        if (viewer != null) {
+            request.header("Authorization", viewer);
+        }
+        long start = System.nanoTime();
+        HttpResponse<String> response = this.client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (response.statusCode() >= 400) {
+            throw new IOException(String.format("Request [%s] failed with status [%d]", url, response.statusCode()));
+        }
+        if (latencies != null) {
+            latencies.add(latency);
+        }
+        return response.body();
+    }
+
+    private List<String[]> findPanelURLs(String page)
+    {
+        URI base = URI.create(this.baseURL);
+        List<String[]> urls = new ArrayList<>();
+        Matcher matcher = PANEL_URL.matcher(page);
+        while (matcher.find()) {
+            String url = matcher.group(2).replace("&amp;", "&");
+            urls.add(new String[] {matcher.group(1), base.resolve(url).toString()});
+        }
+        return urls;
+    }
+
+    /**
+     * @return the number of database statements prepared by Hibernate, or -1 when the JMX scrape is not configured
+     */
+    private long readStatementCount()
+    {
+        String jmxURL = this.configuration.getProperty("jmx.url", "").trim();
+        if (jmxURL.isEmpty()) {
+            return -1;
+        }
+        try (JMXConnector connector = JMXConnectorFactory.connect(new JMXServiceURL(jmxURL))) {
+            MBeanServerConnection connection = connector.getMBeanServerConnection();
+            Object value = connection.getAttribute(new ObjectName(this.configuration.getProperty("jmx.object")),
+                this.configuration.getProperty("jmx.attribute", "PrepareStatementCount"));
+            return ((Number) value).longValue();
+        } catch (Exception e) {
+            System.err.printf("Failed to read the database statement count: %s%n", e);
+            return -1;
+        }
+    }
+
+    private static void report(String scenario, int threads, long duration,
+        Map<String, ConcurrentLinkedQueue<Long>> latencies, long errors, long statements)
+    {
+        double seconds = duration / 1000.0;
+        System.out.printf("%nScenario [%s], %d viewers, %.0f s measured, %d errors%n", scenario, threads, seconds,
+            errors);
+        System.out.printf("  %-10s %10s %10s %10s %10s %10s%n", "request", "count", "req/s", "p50 (ms)", "p99 (ms)",
+            "max (ms)");
+        long requests = 0;
+        for (Map.Entry<String, ConcurrentLinkedQueue<Long>> kind : latencies.entrySet()) {
+            List<Long> values = new ArrayList<>(kind.getValue());
+            if (values.isEmpty()) {
+                continue;
+            }
+            Collections.sort(values);
+            requests += values.size();
+            System.out.printf("  %-10s %10d %10.1f %10d %10d %10d%n", kind.getKey(), values.size(),
+                values.size() / seconds, percentile(values, 50), percentile(values, 99), values.get(values.size() - 1));
+        }
+        if (statements >= 0) {
+            System.out.printf("  database statements: %d (%.1f per request)%n", statements,
+                requests > 0 ? (double) statements / requests : 0.0);
+        } else {
+            System.out.println("  database statements: n/a (jmx.url not configured)");
+        }
+    }
+
+    private static long percentile(List<Long> sortedValues, int percentile)
+    {
+        int index = (int) Math.ceil(percentile / 100.0 * sortedValues.size()) - 1;
+        return sortedValues.get(Math.max(0, index));
+    }
+
+    // Helpers
+
+    private static void sleep(long millis)
+    {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String authorization(String user, String password)
+    {
+        return "Basic " + Base64.getEncoder()
+            .encodeToString(String.format("%s:%s", user, password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String encode(String value)
+    {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private List<String> getList(String key)
+    {
+        List<String> values = new ArrayList<>();
+        for (String value : this.configuration.getProperty(key, "").split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    private String getString(String scenario, String key, String defaultValue)
+    {
+        return this.configuration.getProperty(String.format("%s.%s", scenario, key), defaultValue).trim();
+    }
+
+    private int getInt(String scenario, String key, int defaultValue)
+    {
+        return Integer.parseInt(getString(scenario, key, String.valueOf(defaultValue)));
+    }
+
+    private int getInt(String key, int defaultValue)
+    {
+        return Integer.parseInt(this.configuration.getProperty(key, String.valueOf(defaultValue)).trim());
+    }
+
+    private boolean getBoolean(String key, boolean defaultValue)
+    {
+        return Boolean.parseBoolean(this.configuration.getProperty(key, String.valueOf(defaultValue)).trim());
+    }
+}
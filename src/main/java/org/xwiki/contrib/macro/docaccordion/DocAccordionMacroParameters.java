@@ -47,7 +47,19 @@ public class DocAccordionMacroParameters
         /**
          * Accordions sorted alphabetically by document fullName.
          */
-        ALPHA_DOCFULLNAME
+        ALPHA_DOCFULLNAME,
+
+        /**
+         * Accordions sorted by the value of the sort property of the application class, in ascending order. The entries
+         * without a value for the property are listed last, sorted by document fullName.
+         */
+        PROPERTY_ASC,
+
+        /**
+         * Accordions sorted by the value of the sort property of the application class, in descending order. The entries
+         * without a value for the property are listed last, sorted by document fullName.
+         */
+        PROPERTY_DESC
     }
 
     /**
@@ -100,6 +112,36 @@ public class DocAccordionMacroParameters
      */
     private boolean ignoreSpaceWebHomePage = true;
 
+    /**
+     * @see #getShowFilter()
+     */
+    private boolean showFilter;
+
+    /**
+     * @see #getHierarchical()
+     */
+    private boolean hierarchical;
+
+    /**
+     * @see #getUseSnapshots()
+     */
+    private boolean useSnapshots;
+
+    /**
+     * @see #getSortProperty()
+     */
+    private String sortProperty;
+
+    /**
+     * @see #getFilterProperty()
+     */
+    private String filterProperty;
+
+    /**
+     * @see #getFilterValue()
+     */
+    private String filterValue;
+
     /**
      * @return the space parameter
      */
@@ -279,4 +321,112 @@ public class DocAccordionMacroParameters
     {
         this.ignoreSpaceWebHomePage = ignoreSpaceWebHomePage;
     }
+
+    /**
+     * @return the showFilter parameter
+     */
+    public boolean getShowFilter()
+    {
+        return this.showFilter;
+    }
+
+    /**
+     * @param showFilter the showFilter parameter
+     */
+    @PropertyName("Show the filter")
+    @PropertyDescription("Display a search box to filter the accordions by title.")
+    public void setShowFilter(boolean showFilter)
+    {
+        this.showFilter = showFilter;
+    }
+
+    /**
+     * @return the sortProperty parameter
+     */
+    public String getSortProperty()
+    {
+        return this.sortProperty;
+    }
+
+    /**
+     * @param sortProperty the sortProperty parameter
+     */
+    @PropertyName("Sort property")
+    @PropertyDescription("The property of the application class used when sorting the accordions by property.")
+    public void setSortProperty(String sortProperty)
+    {
+        this.sortProperty = sortProperty;
+    }
+
+    /**
+     * @return the filterProperty parameter
+     */
+    public String getFilterProperty()
+    {
+        return this.filterProperty;
+    }
+
+    /**
+     * @param filterProperty the filterProperty parameter
+     */
+    @PropertyName("Filter property")
+    @PropertyDescription("Limit the selection to documents whose application class property has the filter value.")
+    public void setFilterProperty(String filterProperty)
+    {
+        this.filterProperty = filterProperty;
+    }
+
+    /**
+     * @return the filterValue parameter
+     */
+    public String getFilterValue()
+    {
+        return this.filterValue;
+    }
+
+    /**
+     * @param filterValue the filterValue parameter
+     */
+    @PropertyName("Filter value")
+    @PropertyDescription("The value that the filter property must have.")
+    public void setFilterValue(String filterValue)
+    {
+        this.filterValue = filterValue;
+    }
+
+    /**
+     * @return the hierarchical parameter
+     */
+    public boolean getHierarchical()
+    {
+        return this.hierarchical;
+    }
+
+    /**
+     * @param hierarchical the hierarchical parameter
+     */
+    @PropertyName("Show as a tree")
+    @PropertyDescription("Only list the direct children of the location. The children of a nested page are listed in a nested accordion when it is expanded.")
+    public void setHierarchical(boolean hierarchical)
+    {
+        this.hierarchical = hierarchical;
+    }
+
+    /**
+     * @return the useSnapshots parameter
+     */
+    public boolean getUseSnapshots()
+    {
+        return this.useSnapshots;
+    }
+
+    /**
+     * @param useSnapshots the useSnapshots parameter
+     */
+    @PropertyName("Use rendered snapshots")
+    @PropertyDescription("Display the accordion content from a snapshot rendered once per document version. Content included from other documents or computed when rendering stays stale until the document is saved. Documents that guests can view are rendered as a guest.")
+    public void setUseSnapshots(boolean useSnapshots)
+    {
+        this.useSnapshots = useSnapshots;
+    }
 }
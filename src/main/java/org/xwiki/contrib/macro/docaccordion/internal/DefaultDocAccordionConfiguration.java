@@ -0,0 +1,109 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.macro.docaccordion.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+
+/**
+ * Default {@link DocAccordionConfiguration}, reading the {@code docaccordion.*} properties of {@code xwiki.properties}.
+ */
+@Component
+@Singleton
+public class DefaultDocAccordionConfiguration implements DocAccordionConfiguration
+{
+    private static final String PREFIX = "docaccordion.";
+
+    private static final int DEFAULT_MAX_QUERY_PAGES = 10;
+
+    private static final int DEFAULT_MAX_DOCUMENTS = 500;
+
+    private static final long DEFAULT_RENDER_TIMEOUT = 10000L;
+
+    private static final int DEFAULT_MAX_CONCURRENT_RENDERS = 20;
+
+    private static final long DEFAULT_CONCURRENT_RENDER_WAIT = 2000L;
+
+    private static final int DEFAULT_SNAPSHOTS_MAX_DOCUMENTS = 1000;
+
+    private static final int DEFAULT_SNAPSHOTS_MAX_FILES_PER_DOCUMENT = 100;
+
+    private static final long DEFAULT_SNAPSHOTS_MAX_AGE = 86400000L;
+
+    @Inject
+    @Named("xwikiproperties")
+    private Provider<ConfigurationSource> configuration;
+
+    @Override
+    public int getMaxQueryPages()
+    {
+        return this.configuration.get().getProperty(PREFIX + "maxQueryPages", DEFAULT_MAX_QUERY_PAGES);
+    }
+
+    @Override
+    public int getMaxDocuments()
+    {
+        return this.configuration.get().getProperty(PREFIX + "maxDocuments", DEFAULT_MAX_DOCUMENTS);
+    }
+
+    @Override
+    public long getRenderTimeout()
+    {
+        return this.configuration.get().getProperty(PREFIX + "renderTimeout", DEFAULT_RENDER_TIMEOUT);
+    }
+
+    @Override
+    public int getMaxConcurrentRenders()
+    {
+        return this.configuration.get().getProperty(PREFIX + "maxConcurrentRenders", DEFAULT_MAX_CONCURRENT_RENDERS);
+    }
+
+    @Override
+    public long getConcurrentRenderWait()
+    {
+        return this.configuration.get().getProperty(PREFIX + "concurrentRenderWait",
+            DEFAULT_CONCURRENT_RENDER_WAIT);
+    }
+
+    @Override
+    public int getSnapshotsMaxDocuments()
+    {
+        return this.configuration.get().getProperty(PREFIX + "snapshots.maxDocuments",
+            DEFAULT_SNAPSHOTS_MAX_DOCUMENTS);
+    }
+
+    @Override
+    public int getSnapshotsMaxFilesPerDocument()
+    {
+        return this.configuration.get().getProperty(PREFIX + "snapshots.maxFilesPerDocument",
+            DEFAULT_SNAPSHOTS_MAX_FILES_PER_DOCUMENT);
+    }
+
+    @Override
+    public long getSnapshotsMaxAge()
+    {
+        return this.configuration.get().getProperty(PREFIX + "snapshots.maxAge", DEFAULT_SNAPSHOTS_MAX_AGE);
+    }
+}
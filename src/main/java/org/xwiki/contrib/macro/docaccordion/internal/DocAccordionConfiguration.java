@@ -0,0 +1,72 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.macro.docaccordion.internal;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Configuration of the resources a document accordion is allowed to consume when rendered. The values are read from
+ * the {@code xwiki.properties} file and zero or a negative value disables the corresponding limit.
+ */
+@Role
+public interface DocAccordionConfiguration
+{
+    /**
+     * @return the maximum number of query pages executed to select the documents of an accordion
+     */
+    int getMaxQueryPages();
+
+    /**
+     * @return the maximum number of documents loaded to render an accordion
+     */
+    int getMaxDocuments();
+
+    /**
+     * @return the maximum time, in milliseconds, spent rendering an accordion
+     */
+    long getRenderTimeout();
+
+    /**
+     * @return the maximum number of accordions rendered at the same time in the wiki
+     */
+    int getMaxConcurrentRenders();
+
+    /**
+     * @return the time, in milliseconds, to wait for a concurrent render to finish before giving up
+     */
+    long getConcurrentRenderWait();
+
+    /**
+     * @return the maximum number of documents whose rendered snapshots are kept, the least recently used are removed
+     *         first
+     */
+    int getSnapshotsMaxDocuments();
+
+    /**
+     * @return the maximum number of snapshots kept for a single document, i.e. for its viewers and locales, the least
+     *         recently used are removed first
+     */
+    int getSnapshotsMaxFilesPerDocument();
+
+    /**
+     * @return the time, in milliseconds, after which the snapshots of a document that was not displayed are removed
+     */
+    long getSnapshotsMaxAge();
+}
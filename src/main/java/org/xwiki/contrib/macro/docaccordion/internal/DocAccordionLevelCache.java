@@ -0,0 +1,125 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.macro.docaccordion.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.contrib.macro.docaccordion.DocAccordionMacroParameters;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.SpaceReference;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Caches the documents listed by each level of a hierarchical document accordion, so that rendering a page or
+ * expanding a nested level again does not query the database. A level depends on the rights of the viewer, so it is
+ * cached per user. The whole cache is cleared when a document is created, updated or deleted, since this is also how
+ * spaces and rights change.
+ */
+@Component(roles = DocAccordionLevelCache.class)
+@Singleton
+public class DocAccordionLevelCache implements Initializable, Disposable
+{
+    private static final int CACHE_SIZE = 1000;
+
+    private static final String GUEST = "XWiki.XWikiGuest";
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    private Cache<List<String>> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.cache = this.cacheManager.createNewCache(new LRUCacheConfiguration("docaccordion.levels", CACHE_SIZE));
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the document accordion level cache", e);
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.cache.dispose();
+    }
+
+    /**
+     * @param spaceReference the space listed by the level
+     * @param parameters the parameters of the level
+     * @return the key of the level for the current user
+     */
+    public String getKey(SpaceReference spaceReference, DocAccordionMacroParameters parameters)
+    {
+        DocumentReference userReference = this.contextProvider.get().getUserReference();
+        return String.format("%s|%s|%s|%s|%s", userReference != null ? this.serializer.serialize(userReference) : GUEST,
+            this.serializer.serialize(spaceReference), parameters.getSort(), parameters.getLimit(),
+            parameters.getIgnoreSpaceWebHomePage());
+    }
+
+    /**
+     * @param key the level key
+     * @return the full names of the documents listed by the level, {@code null} if the level is not cached
+     */
+    public List<String> get(String key)
+    {
+        return this.cache.get(key);
+    }
+
+    /**
+     * @param key the level key
+     * @param documents the full names of the documents listed by the level
+     */
+    public void set(String key, List<String> documents)
+    {
+        this.cache.set(key, Collections.unmodifiableList(new ArrayList<>(documents)));
+    }
+
+    /**
+     * Remove all the cached levels.
+     */
+    public void clear()
+    {
+        this.cache.removeAll();
+    }
+}
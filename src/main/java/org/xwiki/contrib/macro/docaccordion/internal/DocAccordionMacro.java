@@ -21,10 +21,14 @@ package org.xwiki.contrib.macro.docaccordion.internal;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -32,6 +36,7 @@ import javax.inject.Provider;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateUtils;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.contrib.macro.docaccordion.DocAccordionMacroParameters;
@@ -45,6 +50,7 @@ import org.xwiki.model.reference.EntityReferenceResolver;
 import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
 import org.xwiki.rendering.block.Block;
 import org.xwiki.rendering.block.GroupBlock;
@@ -66,6 +72,12 @@ import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.PropertyInterface;
+import com.xpn.xwiki.objects.classes.BaseClass;
+import com.xpn.xwiki.objects.classes.DateClass;
+import com.xpn.xwiki.objects.classes.PropertyClass;
+import com.xpn.xwiki.web.Utils;
 
 /**
  * DocAccordion Macro.
@@ -89,6 +101,21 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
 
     private static final String APPLICATIONS_TRANSLATIONS_PREFIX = "rendering.macro.docaccordion.application.";
 
+    /**
+     * The property tables that can be joined to sort or filter on an application class property. Large strings and
+     * lists are excluded since their values cannot be compared or ordered reliably on every database.
+     */
+    private static final List<String> QUERYABLE_PROPERTY_TABLES = Arrays.asList("StringProperty", "DateProperty",
+        "IntegerProperty", "LongProperty", "FloatProperty", "DoubleProperty");
+
+    private static final String WEB_HOME = "WebHome";
+
+    private static final String CHILDREN_TEMPLATE = "docaccordion_children";
+
+    private static final String PANEL_TEMPLATE = "docaccordion_panel";
+
+    private static final String SEARCH_TERMS_SEPARATOR = "[^\\p{L}\\p{N}]+";
+
     @Inject
     private QueryManager queryManager;
 
@@ -115,6 +142,18 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
     @Inject
     private LocalizationManager localization;
 
+    @Inject
+    private DocAccordionConfiguration configuration;
+
+    @Inject
+    private DocAccordionRenderLimiter renderLimiter;
+
+    @Inject
+    private DocAccordionLevelCache levelCache;
+
+    @Inject
+    private DocAccordionSnapshotStore snapshotStore;
+
     @Inject
     @Named("jsrx")
     private SkinExtension jsrxSkinExtension;
@@ -135,6 +174,13 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
     public List<Block> execute(DocAccordionMacroParameters parameters, String content,
         MacroTransformationContext transformationContext) throws MacroExecutionException
     {
+        // Degrade gracefully instead of piling up renders when too many accordions are rendered at the same time
+        if (!renderLimiter.tryAcquire()) {
+            logger.debug("Too many document accordions are being rendered, skipping the accordion of [{}]",
+                parameters.getSpace());
+            return Arrays.asList(generateMessageBlock("rendering.macro.docaccordion.busy", "box warningmessage"));
+        }
+
         List<Block> result = new ArrayList<>();
 
         try {
@@ -173,14 +219,23 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
                 }
             }
 
+            // Application entries are not organized as a tree
+            if (xclassReference != null) {
+                parameters.setHierarchical(false);
+            }
+
             if (xclassReference == null && StringUtils.isBlank(parameters.getSpace())) {
                 throw new MacroExecutionException(localization
                     .getTranslation("rendering.macro.docaccordion.wrong_parameters", contextProvider.get().getLocale())
                     .getRawSource().toString());
             }
             try {
-                List<String> accordionsStringReferences = getAccordions(spaceReference, xclassReference, parameters);
-                result = generateAccordionBlocks(accordionsStringReferences, parameters, transformationContext);
+                RenderBudget budget = new RenderBudget(configuration.getMaxQueryPages(),
+                    configuration.getMaxDocuments(), configuration.getRenderTimeout());
+                List<String> accordionsStringReferences =
+                    getAccordions(spaceReference, xclassReference, parameters, budget);
+                result = generateAccordionBlocks(accordionsStringReferences, spaceReference, parameters,
+                    transformationContext, budget);
             } catch (Exception e) {
                 throw new MacroExecutionException(String.format(
                     "An error appears when trying to get accordions for the parameters [space: %s, xclass: %s, sort: %s, limit: %s], reason: %s",
@@ -190,6 +245,8 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
 
         } catch (XWikiException xe) {
             throw new MacroExecutionException(xe.getMessage());
+        } finally {
+            renderLimiter.release();
         }
 
         // Inject JS/CSS helper scripts
@@ -218,7 +275,7 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
         XWikiContext xcontext = contextProvider.get();
         XWiki xwiki = xcontext.getWiki();
 
-        DocumentReference awmMainPageReference = new DocumentReference("WebHome", spaceReference);
+        DocumentReference awmMainPageReference = new DocumentReference(WEB_HOME, spaceReference);
 
         if (xwiki.exists(awmMainPageReference, xcontext)) {
             XWikiDocument awmMainDocument = xwiki.getDocument(awmMainPageReference, xcontext);
@@ -231,7 +288,7 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
     }
 
     private List<String> getAccordions(SpaceReference spaceReference, DocumentReference xclassReference,
-        DocAccordionMacroParameters parameters) throws Exception
+        DocAccordionMacroParameters parameters, RenderBudget budget) throws Exception
     {
         List<String> authorizedResults = new ArrayList<>();
 
@@ -239,19 +296,54 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
             return authorizedResults;
         }
 
+        // The levels of a hierarchical accordion are listed again each time a page is rendered or a level is expanded
+        String levelKey = parameters.getHierarchical() ? this.levelCache.getKey(spaceReference, parameters) : null;
+        if (levelKey != null) {
+            List<String> cachedLevel = this.levelCache.get(levelKey);
+            if (cachedLevel != null) {
+                authorizedResults.addAll(cachedLevel);
+                return authorizedResults;
+            }
+        }
+
+        // Resolve the application class properties used to sort and filter the results
+        boolean sortByProperty = DocAccordionMacroSort.PROPERTY_ASC.equals(parameters.getSort())
+            || DocAccordionMacroSort.PROPERTY_DESC.equals(parameters.getSort());
+        PropertyClass sortPropertyClass =
+            sortByProperty ? getQueryableProperty(xclassReference, parameters.getSortProperty()) : null;
+        PropertyClass filterPropertyClass = !StringUtils.isBlank(parameters.getFilterProperty())
+            ? getQueryableProperty(xclassReference, parameters.getFilterProperty()) : null;
+
         // Generate the query
-        StringBuilder hql = new StringBuilder("");
-        hql.append(xclassReference != null ? ", BaseObject AS obj " : "");
-        hql.append("WHERE");
+        StringBuilder from = new StringBuilder("");
+        from.append(xclassReference != null ? ", BaseObject AS obj " : "");
+        if (filterPropertyClass != null) {
+            from.append(
+                String.format(", %s AS filterProp ", filterPropertyClass.newProperty().getClass().getSimpleName()));
+        }
+        StringBuilder where = new StringBuilder("WHERE");
         if (xclassReference != null) {
-            hql.append(" obj.name=doc.fullName AND obj.className=:xclass");
+            where.append(" obj.name=doc.fullName AND obj.className=:xclass");
+        }
+
+        // Join the filter property table, the properties exist only when an xclass is set. Dates are matched on the
+        // whole day since the stored values also hold the time.
+        boolean filterByDay = filterPropertyClass instanceof DateClass;
+        if (filterPropertyClass != null) {
+            where.append(" AND filterProp.id.id=obj.id AND filterProp.name=:filterProperty");
+            where.append(filterByDay ? " AND filterProp.value>=:filterValue AND filterProp.value<:filterValueEnd"
+                : " AND filterProp.value=:filterValue");
         }
 
         // Filter by space
         if (!StringUtils.isBlank(parameters.getSpace())) {
-            hql.append(String.format(" %s %s", xclassReference != null ? "AND" : "",
-                (xclassReference == null && parameters.getShowSpaceTopLevelDocs()) ? "doc.space=:space1"
-                    : "doc.fullName LIKE :space2 escape '!'"));
+            String spaceFilter = "doc.fullName LIKE :space2 escape '!'";
+            if (parameters.getHierarchical()
+                || (xclassReference == null && parameters.getShowSpaceTopLevelDocs())) {
+                // In hierarchical mode the nested spaces are listed separately, through their home page
+                spaceFilter = "doc.space=:space1";
+            }
+            where.append(String.format(" %s %s", xclassReference != null ? "AND" : "", spaceFilter));
         }
 
         // Exclude class templates, WebPreferences and hidden pages
@@ -259,9 +351,10 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
         excludeQuery = excludeQuery + " AND doc.name <> 'WebPreferences' AND doc.hidden=0";
         excludeQuery = excludeQuery + ((xclassReference == null && parameters.getIgnoreSpaceWebHomePage())
             ? " AND doc.fullName<>:webHome" : "");
-        hql.append(excludeQuery);
+        where.append(excludeQuery);
 
         // Sort results
+        List<String> statements = new ArrayList<>();
         String orderBy = " ORDER BY doc.date DESC";
         if (DocAccordionMacroSort.ALPHA.equals(parameters.getSort())) {
             orderBy = " ORDER BY doc.title, doc.fullName";
@@ -269,26 +362,62 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
             orderBy = " ORDER BY doc.name";
         } else if (DocAccordionMacroSort.ALPHA_DOCFULLNAME.equals(parameters.getSort())) {
             orderBy = " ORDER BY doc.fullName";
+        } else if (sortPropertyClass != null) {
+            String sortTable = sortPropertyClass.newProperty().getClass().getSimpleName();
+            String propertyCondition = "%1$s.id.id=obj.id AND %1$s.name=:sortProperty AND %1$s.value IS NOT NULL";
+            statements.add(String.format("%s, %s AS sortProp %s AND %s ORDER BY sortProp.value %s, doc.fullName", from,
+                sortTable, where, String.format(propertyCondition, "sortProp"),
+                DocAccordionMacroSort.PROPERTY_ASC.equals(parameters.getSort()) ? "ASC" : "DESC"));
+            // The entries without a value for the sort property (e.g. created before the property was added to the
+            // class) are listed last, ordered by full name, so that the sort never changes which documents are listed
+            statements.add(String.format(
+                "%s%s AND NOT EXISTS (SELECT missing.id.id FROM %s AS missing WHERE %s) ORDER BY doc.fullName", from,
+                where, sortTable, String.format(propertyCondition, "missing")));
         }
 
-        hql.append(orderBy);
+        if (statements.isEmpty()) {
+            statements.add(from.toString() + where + orderBy);
+        }
 
-        Query query = queryManager.createQuery(hql.toString(), Query.HQL);
+        Map<String, Object> bindings = new HashMap<>();
 
         if (xclassReference != null) {
-            query.bindValue("xclass", localSerializer.serialize(xclassReference));
+            bindings.put("xclass", localSerializer.serialize(xclassReference));
+        }
+
+        if (sortPropertyClass != null) {
+            bindings.put("sortProperty", sortPropertyClass.getName());
+        }
+
+        if (filterPropertyClass != null) {
+            // Let the property class convert the value to the type stored in the property table
+            BaseProperty filterValue =
+                filterPropertyClass.fromString(StringUtils.defaultString(parameters.getFilterValue()));
+            if (filterValue == null || filterValue.getValue() == null) {
+                throw new MacroExecutionException(String.format("Invalid value [%s] for the property [%s]",
+                    parameters.getFilterValue(), filterPropertyClass.getName()));
+            }
+            bindings.put("filterProperty", filterPropertyClass.getName());
+            if (filterByDay) {
+                Date day = DateUtils.truncate((Date) filterValue.getValue(), Calendar.DAY_OF_MONTH);
+                bindings.put("filterValue", day);
+                bindings.put("filterValueEnd", DateUtils.addDays(day, 1));
+            } else {
+                bindings.put("filterValue", filterValue.getValue());
+            }
         }
 
         if (!StringUtils.isBlank(parameters.getSpace())) {
-            if (xclassReference == null && parameters.getShowSpaceTopLevelDocs()) {
-                query.bindValue("space1", localSerializer.serialize(spaceReference));
+            if (parameters.getHierarchical()
+                || (xclassReference == null && parameters.getShowSpaceTopLevelDocs())) {
+                bindings.put("space1", localSerializer.serialize(spaceReference));
             } else {
                 // Added to fix a pitfall on mysql when we have spaces with points '.'
                 String spaceLike = localSerializer.serialize(spaceReference).replaceAll("([%_!])", "!$1").concat(".%");
-                query.bindValue("space2", spaceLike);
+                bindings.put("space2", spaceLike);
             }
             if (xclassReference == null && parameters.getIgnoreSpaceWebHomePage()) {
-                query.bindValue("webHome", String.format("%s.WebHome", localSerializer.serialize(spaceReference)));
+                bindings.put("webHome", String.format("%s.WebHome", localSerializer.serialize(spaceReference)));
             }
         }
 
@@ -298,39 +427,137 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
             queryLimit = MAX_QUERY_LIMIT;
         }
 
-        query.setLimit(queryLimit);
+        if (parameters.getHierarchical()) {
+            authorizedResults.addAll(getNestedSpaceHomes(spaceReference, parameters, budget));
+        }
+
+        for (String statement : statements) {
+            if ((authorizedResults.size() == parameters.getLimit()) || budget.isExhausted()) {
+                break;
+            }
 
-        int offset = 0;
-        boolean stop = false;
+            Query query = queryManager.createQuery(statement, Query.HQL);
+            for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+                query.bindValue(binding.getKey(), binding.getValue());
+            }
 
-        do {
-            query.setOffset(offset);
-            List<String> results = query.execute();
-            for (String docFullName : results) {
-                DocumentReference documentReference = documentReferenceResolver.resolve(docFullName);
+            query.setLimit(queryLimit);
 
-                if (authorizedResults.size() == parameters.getLimit()) {
+            int offset = 0;
+            boolean stop = false;
+
+            do {
+                if (!budget.acquireQueryPage()) {
                     break;
                 }
 
-                if (authorizationManager.hasAccess(Right.VIEW, documentReference)) {
-                    authorizedResults.add(docFullName);
+                query.setOffset(offset);
+                List<String> results = query.execute();
+                for (String docFullName : results) {
+                    DocumentReference documentReference = documentReferenceResolver.resolve(docFullName);
+
+                    if (authorizedResults.size() == parameters.getLimit() || !budget.checkDeadline()) {
+                        break;
+                    }
+
+                    if (authorizationManager.hasAccess(Right.VIEW, documentReference)) {
+                        authorizedResults.add(docFullName);
+                    }
+                }
+
+                if ((authorizedResults.size() == parameters.getLimit()) || (results.size() < queryLimit)
+                    || budget.isExhausted()) {
+                    stop = true;
                 }
+
+                offset = offset + queryLimit;
+
+            } while (!stop);
+        }
+
+        // Don't cache a level truncated because the render budget was exhausted
+        if (levelKey != null && !budget.isExhausted()) {
+            this.levelCache.set(levelKey, authorizedResults);
+        }
+
+        return authorizedResults;
+    }
+
+    /**
+     * Get the home pages of the direct nested spaces of a space, including the ones that do not exist, so that the
+     * nested spaces without a home page can still be expanded in hierarchical mode.
+     * 
+     * @param spaceReference the parent space
+     * @param parameters the macro parameters
+     * @param budget the render budget
+     * @return the full names of the nested space home pages the current user can view, sorted by space name
+     */
+    private List<String> getNestedSpaceHomes(SpaceReference spaceReference, DocAccordionMacroParameters parameters,
+        RenderBudget budget) throws QueryException
+    {
+        List<String> nestedSpaceHomes = new ArrayList<>();
+
+        if (!budget.acquireQueryPage()) {
+            return nestedSpaceHomes;
+        }
+
+        Query query = queryManager.createQuery("SELECT nested.reference FROM XWikiSpace nested"
+            + " WHERE nested.parent=:space AND nested.hidden=0 ORDER BY nested.name", Query.HQL);
+        query.bindValue("space", localSerializer.serialize(spaceReference));
+        query.setLimit(parameters.getLimit());
+
+        for (Object nestedSpace : query.execute()) {
+            if (!budget.checkDeadline()) {
+                break;
             }
 
-            if ((authorizedResults.size() == parameters.getLimit()) || (results.size() < queryLimit)) {
-                stop = true;
+            DocumentReference nestedSpaceHome = new DocumentReference(WEB_HOME,
+                new SpaceReference(entityReferenceResolver.resolve((String) nestedSpace, EntityType.SPACE)));
+            if (authorizationManager.hasAccess(Right.VIEW, nestedSpaceHome)) {
+                nestedSpaceHomes.add(localSerializer.serialize(nestedSpaceHome));
             }
+        }
 
-            offset = offset + queryLimit;
+        return nestedSpaceHomes;
+    }
+
+    /**
+     * Get a property of the application class that can be joined in the query to sort or filter the results.
+     * 
+     * @param xclassReference the application class reference
+     * @param propertyName the name of the property
+     * @return the property definition
+     * @throws MacroExecutionException if the property does not exist or cannot be queried
+     */
+    private PropertyClass getQueryableProperty(DocumentReference xclassReference, String propertyName)
+        throws XWikiException, MacroExecutionException
+    {
+        if (xclassReference == null) {
+            throw new MacroExecutionException(
+                String.format("Sorting or filtering by the property [%s] requires an application class", propertyName));
+        }
 
-        } while (!stop);
+        if (StringUtils.isBlank(propertyName)) {
+            throw new MacroExecutionException("The property to sort the accordions by is missing");
+        }
 
-        return authorizedResults;
+        XWikiContext xcontext = contextProvider.get();
+        BaseClass xclass = xcontext.getWiki().getXClass(xclassReference, xcontext);
+        PropertyInterface property = xclass.get(propertyName.trim());
+
+        if (!(property instanceof PropertyClass) || !QUERYABLE_PROPERTY_TABLES
+            .contains(((PropertyClass) property).newProperty().getClass().getSimpleName())) {
+            throw new MacroExecutionException(String.format(
+                "The property [%s] does not exist in the class [%s] or cannot be used to sort or filter", propertyName,
+                xclassReference));
+        }
+
+        return (PropertyClass) property;
     }
 
     private List<Block> generateAccordionBlocks(List<String> accordionsStringReferences,
-        DocAccordionMacroParameters parameters, MacroTransformationContext transformationContext)
+        SpaceReference spaceReference, DocAccordionMacroParameters parameters,
+        MacroTransformationContext transformationContext, RenderBudget budget)
     {
         List<Block> result = new ArrayList<Block>();
 
@@ -344,20 +571,40 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
         topContainerBlockParams.put("aria-multiselectable", "true");
         String topContainerBlockIdSuffix = RandomStringUtils.random(6, true, true);
         topContainerBlockParams.put("id", String.format("accordion%s", topContainerBlockIdSuffix));
+        if (parameters.getShowFilter()) {
+            // The search box is created client side, from the search terms indexed on each accordion item
+            Locale locale = xcontext.getLocale();
+            topContainerBlockParams.put("data-filter", "true");
+            topContainerBlockParams.put("data-filter-placeholder", localization
+                .getTranslation("rendering.macro.docaccordion.filter.placeholder", locale).getRawSource().toString());
+            topContainerBlockParams.put("data-filter-noresults", localization
+                .getTranslation("rendering.macro.docaccordion.filter.noresults", locale).getRawSource().toString());
+        }
         GroupBlock topContainerBlock = new GroupBlock(new ArrayList<Block>(), topContainerBlockParams);
 
         // Accordions blocks
         for (int i = 0; i < accordionsStringReferences.size(); i++) {
             String accordionFullName = accordionsStringReferences.get(i);
 
+            if (!budget.acquireDocument()) {
+                break;
+            }
+
             try {
                 XWikiDocument accordionItemDoc =
                     xwiki.getDocument(documentReferenceResolver.resolve(accordionFullName), xcontext);
-                String title = accordionItemDoc.getRenderedTitle(transformationContext.getSyntax(), xcontext);
+                // Nested spaces without a home page are displayed as a placeholder listing their children
+                boolean spacePlaceholder = accordionItemDoc.isNew();
+                String title =
+                    spacePlaceholder ? accordionItemDoc.getDocumentReference().getLastSpaceReference().getName()
+                        : accordionItemDoc.getRenderedTitle(transformationContext.getSyntax(), xcontext);
 
                 // Accordion item block
                 Map<String, String> accordionItemBlockParams = new HashMap<>();
                 accordionItemBlockParams.put("class", "panel panel-default");
+                if (parameters.getShowFilter()) {
+                    accordionItemBlockParams.put("data-terms", getSearchTerms(title));
+                }
                 GroupBlock accordionItemBlock = new GroupBlock(new ArrayList<Block>(), accordionItemBlockParams);
 
                 // Accordion item Panel heading
@@ -387,7 +634,21 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
                 accordionItemPanelHeadingTitleLinkParams.put("aria-expanded", "true");
                 accordionItemPanelHeadingTitleLinkParams.put("aria-controls",
                     String.format("collapse%s", accordionItemIdSuffix));
-                accordionItemPanelHeadingTitleLinkParams.put("rel", accordionItemDoc.getURL("get", xcontext));
+                if (!spacePlaceholder) {
+                    accordionItemPanelHeadingTitleLinkParams.put("rel",
+                        parameters.getUseSnapshots()
+                            ? accordionItemDoc.getURL("get", String.format("xpage=%s&%s=%s", PANEL_TEMPLATE,
+                                DocAccordionSnapshotStore.TOKEN_PARAMETER,
+                                this.snapshotStore.getToken(accordionItemDoc.getDocumentReference())), xcontext)
+                            : accordionItemDoc.getURL("get", xcontext));
+                }
+                // Nested spaces load their own accordion level when expanded, unlike the home page of the space
+                if (parameters.getHierarchical()
+                    && WEB_HOME.equals(accordionItemDoc.getDocumentReference().getName())
+                    && !spaceReference.equals(accordionItemDoc.getDocumentReference().getLastSpaceReference())) {
+                    accordionItemPanelHeadingTitleLinkParams.put("data-children", getChildrenURL(
+                        accordionItemDoc.getDocumentReference().getLastSpaceReference(), parameters, xcontext));
+                }
                 ResourceReference ressourceReference =
                     new ResourceReference(String.format("#collapse%s", accordionItemIdSuffix), ResourceType.PATH);
                 LinkBlock accordionItemPanelHeadingTitleLink = new LinkBlock(Arrays.<Block>asList(new WordBlock(title)),
@@ -431,7 +692,7 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
 
                 // Add the footer panel to the accordion content (The footer will contain the author + modification
                 // date)
-                if (parameters.getDisplayAuthor() || parameters.getDisplayDate()) {
+                if (!spacePlaceholder && (parameters.getDisplayAuthor() || parameters.getDisplayDate())) {
                     String author = "";
                     if (parameters.getDisplayAuthor()) {
                         author = xwiki.getUserName(localSerializer.serialize(accordionItemDoc.getAuthorReference()),
@@ -490,6 +751,60 @@ public class DocAccordionMacro extends AbstractMacro<DocAccordionMacroParameters
 
         result.add(topContainerBlock);
 
+        // Let the user know that the accordion is partial when a render budget was hit
+        if (budget.isExhausted()) {
+            result.add(generateMessageBlock("rendering.macro.docaccordion.more", "text-muted xwiki-accordion-more"));
+        }
+
         return result;
     }
+
+    private Block generateMessageBlock(String translationKey, String cssClasses)
+    {
+        Map<String, String> messageBlockParams = new HashMap<>();
+        messageBlockParams.put("class", cssClasses);
+        String message =
+            localization.getTranslation(translationKey, contextProvider.get().getLocale()).getRawSource().toString();
+        return new GroupBlock(Arrays.<Block>asList(new WordBlock(message)), messageBlockParams);
+    }
+
+    /**
+     * Get the URL rendering the accordion level listing the direct children of a nested space.
+     * 
+     * @param nestedSpaceReference the nested space
+     * @param parameters the parameters of the current accordion level, propagated to the child level
+     * @param xcontext the XWiki context
+     * @return the URL of the child accordion level
+     */
+    private String getChildrenURL(SpaceReference nestedSpaceReference, DocAccordionMacroParameters parameters,
+        XWikiContext xcontext)
+    {
+        String queryString = String.format(
+            "xpage=%s&space=%s&sort=%s&displayAuthor=%s&displayDate=%s&limit=%s&accordionMaxHeight=%s&showFilter=%s"
+                + "&useSnapshots=%s",
+            CHILDREN_TEMPLATE, Utils.encode(localSerializer.serialize(nestedSpaceReference), xcontext),
+            parameters.getSort(), parameters.getDisplayAuthor(), parameters.getDisplayDate(), parameters.getLimit(),
+            parameters.getAccordionMaxHeight(), parameters.getShowFilter(), parameters.getUseSnapshots());
+        // The nested space may have no home page, so the level is rendered on the current document
+        return xcontext.getDoc().getURL("get", queryString, xcontext);
+    }
+
+    /**
+     * Normalize a title into the space separated list of distinct terms used by the client side filter index. The title
+     * is lower cased independently of the locale, the same way the filter input is on the client side.
+     * 
+     * @param title the accordion title
+     * @return the search terms of the title
+     */
+    private String getSearchTerms(String title)
+    {
+        Set<String> terms = new LinkedHashSet<>();
+        String normalizedTitle = StringUtils.stripAccents(StringUtils.defaultString(title)).toLowerCase(Locale.ROOT);
+        for (String term : normalizedTitle.split(SEARCH_TERMS_SEPARATOR)) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return StringUtils.join(terms, ' ');
+    }
 }
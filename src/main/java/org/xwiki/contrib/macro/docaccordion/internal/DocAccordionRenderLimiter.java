@@ -0,0 +1,85 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.macro.docaccordion.internal;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+
+/**
+ * Limits the number of document accordions rendered at the same time in the wiki, so that a page under heavy load
+ * cannot use all the threads and database connections.
+ */
+@Component(roles = DocAccordionRenderLimiter.class)
+@Singleton
+public class DocAccordionRenderLimiter implements Initializable
+{
+    @Inject
+    private DocAccordionConfiguration configuration;
+
+    /**
+     * The render permits, {@code null} when the number of concurrent renders is not limited.
+     */
+    private Semaphore permits;
+
+    @Override
+    public void initialize()
+    {
+        int maxConcurrentRenders = this.configuration.getMaxConcurrentRenders();
+        if (maxConcurrentRenders > 0) {
+            this.permits = new Semaphore(maxConcurrentRenders, true);
+        }
+    }
+
+    /**
+     * Wait for a render permit, for at most the configured wait time.
+     * 
+     * @return {@code true} if the accordion can be rendered, in which case {@link #release()} must be called once
+     *         done, {@code false} if too many accordions are being rendered
+     */
+    public boolean tryAcquire()
+    {
+        if (this.permits == null) {
+            return true;
+        }
+
+        try {
+            return this.permits.tryAcquire(this.configuration.getConcurrentRenderWait(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Release a permit obtained with {@link #tryAcquire()}.
+     */
+    public void release()
+    {
+        if (this.permits != null) {
+            this.permits.release();
+        }
+    }
+}
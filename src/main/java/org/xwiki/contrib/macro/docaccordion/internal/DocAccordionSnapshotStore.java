@@ -0,0 +1,363 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.macro.docaccordion.internal;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.web.XWikiRequest;
+
+/**
+ * Stores the rendered content of the documents displayed in accordions on the local disk, so that expanding an
+ * accordion reads a file instead of rendering the document again. A snapshot is kept per document version and locale.
+ * <p>
+ * The documents that guests can view share a single snapshot, rendered as a guest so that it never holds content
+ * restricted to some users. The other documents get a snapshot per viewer, since their rendered content depends on the
+ * rights of the viewer. Since a snapshot doesn't depend on the request, snapshots are only used for the requests
+ * generated by an accordion: they must be signed with {@link #getToken(DocumentReference)} and have no other parameter
+ * than the template, the locale and the token.
+ * <p>
+ * A snapshot is only invalidated when its document is saved: content included from other documents or computed when
+ * rendering (e.g. queries, dates) stays stale until then. The snapshots of the least recently used documents are
+ * removed once there are too many of them or they are too old, which also covers the changes not notified to this
+ * instance (e.g. made on another cluster node). The snapshots of a single document are limited the same way.
+ */
+@Component(roles = DocAccordionSnapshotStore.class)
+@Singleton
+public class DocAccordionSnapshotStore implements Initializable
+{
+    /**
+     * The request parameter holding the token of the snapshot.
+     */
+    public static final String TOKEN_PARAMETER = "snapshot";
+
+    private static final Set<String> SNAPSHOT_REQUEST_PARAMETERS =
+        new HashSet<>(Arrays.asList("xpage", "language", TOKEN_PARAMETER));
+
+    private static final String SNAPSHOT_EXTENSION = ".html";
+
+    private static final String SHARED_VIEWER = "shared";
+
+    private static final String TOKEN_ALGORITHM = "HmacSHA256";
+
+    private static final int TOKEN_KEY_LENGTH = 32;
+
+    private static final long CLEANUP_INTERVAL = 60000L;
+
+    private static final Comparator<File> MOST_RECENTLY_USED_FIRST = new Comparator<File>()
+    {
+        @Override
+        public int compare(File file1, File file2)
+        {
+            return Long.compare(file2.lastModified(), file1.lastModified());
+        }
+    };
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private AuthorizationManager authorizationManager;
+
+    @Inject
+    private DocAccordionConfiguration configuration;
+
+    @Inject
+    private Logger logger;
+
+    private File snapshotsDirectory;
+
+    private SecretKeySpec tokenKey;
+
+    private final Lock cleanupLock = new ReentrantLock();
+
+    private volatile long lastCleanup;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.snapshotsDirectory = new File(this.environment.getTemporaryDirectory(), "docaccordion/snapshots");
+
+        // Keep the token key in the permanent directory so that the accordions rendered before a restart, or by
+        // another cluster node sharing this directory, keep loading their snapshots
+        File tokenKeyFile = new File(this.environment.getPermanentDirectory(), "docaccordion/snapshots.key");
+        try {
+            if (!tokenKeyFile.isFile()) {
+                byte[] key = new byte[TOKEN_KEY_LENGTH];
+                new SecureRandom().nextBytes(key);
+                FileUtils.writeByteArrayToFile(tokenKeyFile, key);
+            }
+            this.tokenKey = new SecretKeySpec(FileUtils.readFileToByteArray(tokenKeyFile), TOKEN_ALGORITHM);
+        } catch (IOException e) {
+            throw new InitializationException(
+                String.format("Failed to load the accordion snapshots token key [%s]", tokenKeyFile), e);
+        }
+    }
+
+    /**
+     * @param documentReference the reference of a document displayed in an accordion using snapshots
+     * @return the token allowing to load the snapshot of the document
+     */
+    public String getToken(DocumentReference documentReference)
+    {
+        try {
+            Mac mac = Mac.getInstance(TOKEN_ALGORITHM);
+            mac.init(this.tokenKey);
+            return Hex.encodeHexString(
+                mac.doFinal(this.serializer.serialize(documentReference).getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to compute the accordion snapshot token", e);
+        }
+    }
+
+    /**
+     * @param documentReference the reference of the document to display
+     * @param token the token sent with the request
+     * @return {@code true} if the token was generated by an accordion using snapshots for the given document
+     */
+    public boolean isValidToken(DocumentReference documentReference, String token)
+    {
+        return token != null && MessageDigest.isEqual(getToken(documentReference).getBytes(StandardCharsets.UTF_8),
+            token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the rendered content of a document, from its snapshot when available. The snapshot is created otherwise.
+     * The document is rendered without snapshot when the request has other parameters than the ones sent by an
+     * accordion, since they could change the rendered content.
+     * 
+     * @param document the document to render, in the locale to render
+     * @param xcontext the XWiki context
+     * @return the rendered content of the document
+     * @throws XWikiException if the document fails to be rendered
+     */
+    public String getRenderedContent(XWikiDocument document, XWikiContext xcontext) throws XWikiException
+    {
+        if (!isSnapshotRequest(xcontext.getRequest())) {
+            return document.getRenderedContent(xcontext);
+        }
+
+        boolean shared = this.authorizationManager.hasAccess(Right.VIEW, null, document.getDocumentReference());
+        File snapshot = getSnapshotFile(document, shared ? null : xcontext.getUserReference(), xcontext.getLocale());
+
+        if (snapshot.isFile()) {
+            try {
+                String content = new String(Files.readAllBytes(snapshot.toPath()), StandardCharsets.UTF_8);
+                // Keep track of the snapshot use for the cleanup of the least recently used snapshots
+                long now = System.currentTimeMillis();
+                snapshot.setLastModified(now);
+                snapshot.getParentFile().setLastModified(now);
+                return content;
+            } catch (IOException e) {
+                this.logger.warn("Failed to read the accordion snapshot [{}]: {}", snapshot,
+                    ExceptionUtils.getRootCauseMessage(e));
+            }
+        }
+
+        String content = shared ? renderAsGuest(document, xcontext) : document.getRenderedContent(xcontext);
+        store(snapshot, document.getVersion(), content);
+        cleanup();
+
+        return content;
+    }
+
+    /**
+     * Remove all the snapshots of a document.
+     * 
+     * @param documentReference the document reference
+     */
+    public void invalidate(DocumentReference documentReference)
+    {
+        FileUtils.deleteQuietly(getDocumentDirectory(documentReference));
+    }
+
+    private boolean isSnapshotRequest(XWikiRequest request)
+    {
+        if (request == null) {
+            return false;
+        }
+
+        Collection<?> parameters = request.getParameterMap().keySet();
+        return SNAPSHOT_REQUEST_PARAMETERS.containsAll(parameters);
+    }
+
+    private String renderAsGuest(XWikiDocument document, XWikiContext xcontext) throws XWikiException
+    {
+        DocumentReference userReference = xcontext.getUserReference();
+        try {
+            xcontext.setUserReference(null);
+            return document.getRenderedContent(xcontext);
+        } finally {
+            xcontext.setUserReference(userReference);
+        }
+    }
+
+    private void store(File snapshot, String version, String content)
+    {
+        File temporarySnapshot = null;
+        try {
+            File directory = snapshot.getParentFile();
+            FileUtils.forceMkdir(directory);
+            // Write to a temporary file first so that concurrent readers never get a partial snapshot
+            temporarySnapshot = File.createTempFile("snapshot", ".tmp", directory);
+            Files.write(temporarySnapshot.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temporarySnapshot.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+            // Remove the snapshots of the previous versions for the same viewer and locale, left when the save was
+            // not notified to this instance. Each translation has its own version, so the other locales are kept.
+            String snapshotPrefix = snapshot.getName().substring(0,
+                snapshot.getName().length() - version.length() - SNAPSHOT_EXTENSION.length());
+            File[] snapshots = listSnapshots(directory);
+            for (File otherSnapshot : snapshots) {
+                if (otherSnapshot.getName().startsWith(snapshotPrefix) && !otherSnapshot.equals(snapshot)) {
+                    FileUtils.deleteQuietly(otherSnapshot);
+                }
+            }
+
+            // Remove the least recently used snapshots of the document (e.g. of the viewers who didn't come back)
+            int maxFiles = this.configuration.getSnapshotsMaxFilesPerDocument();
+            snapshots = listSnapshots(directory);
+            if (maxFiles > 0 && snapshots.length > maxFiles) {
+                Arrays.sort(snapshots, MOST_RECENTLY_USED_FIRST);
+                for (int i = maxFiles; i < snapshots.length; i++) {
+                    FileUtils.deleteQuietly(snapshots[i]);
+                }
+            }
+        } catch (IOException e) {
+            this.logger.warn("Failed to store the accordion snapshot [{}]: {}", snapshot,
+                ExceptionUtils.getRootCauseMessage(e));
+            FileUtils.deleteQuietly(temporarySnapshot);
+        }
+    }
+
+    private File[] listSnapshots(File directory)
+    {
+        File[] snapshots = directory.listFiles(new FileFilter()
+        {
+            @Override
+            public boolean accept(File file)
+            {
+                return file.isFile() && file.getName().endsWith(SNAPSHOT_EXTENSION);
+            }
+        });
+        return snapshots != null ? snapshots : new File[0];
+    }
+
+    /**
+     * Remove the snapshots of the documents not used for longer than the maximum age, then the ones of the least
+     * recently used documents until the maximum number of documents is respected. Runs at most once per minute.
+     */
+    private void cleanup()
+    {
+        long now = System.currentTimeMillis();
+        if (now - this.lastCleanup < CLEANUP_INTERVAL || !this.cleanupLock.tryLock()) {
+            return;
+        }
+
+        try {
+            this.lastCleanup = now;
+
+            File[] documentDirectories = this.snapshotsDirectory.listFiles(new FileFilter()
+            {
+                @Override
+                public boolean accept(File file)
+                {
+                    return file.isDirectory();
+                }
+            });
+            if (documentDirectories == null) {
+                return;
+            }
+
+            Arrays.sort(documentDirectories, MOST_RECENTLY_USED_FIRST);
+
+            int maxDocuments = this.configuration.getSnapshotsMaxDocuments();
+            long maxAge = this.configuration.getSnapshotsMaxAge();
+            for (int i = 0; i < documentDirectories.length; i++) {
+                if ((maxDocuments > 0 && i >= maxDocuments)
+                    || (maxAge > 0 && now - documentDirectories[i].lastModified() > maxAge)) {
+                    FileUtils.deleteQuietly(documentDirectories[i]);
+                }
+            }
+        } finally {
+            this.cleanupLock.unlock();
+        }
+    }
+
+    private File getDocumentDirectory(DocumentReference documentReference)
+    {
+        return new File(this.snapshotsDirectory, DigestUtils.md5Hex(this.serializer.serialize(documentReference)));
+    }
+
+    /**
+     * The snapshot depends on the locale of the context rather than on the locale of the document translation, since
+     * the content can also display translations of the user interface. The locale is written as a language tag, which
+     * doesn't contain the separator of the snapshot name.
+     */
+    private File getSnapshotFile(XWikiDocument document, DocumentReference viewerReference, Locale locale)
+    {
+        String viewer =
+            viewerReference != null ? DigestUtils.md5Hex(this.serializer.serialize(viewerReference)) : SHARED_VIEWER;
+        String snapshotName = String.format("%s_%s_%s%s", viewer, locale.toLanguageTag(), document.getVersion(),
+            SNAPSHOT_EXTENSION);
+        return new File(getDocumentDirectory(document.getDocumentReference()), snapshotName);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.macro.docaccordion.internal;
+
+/**
+ * Tracks the resources consumed by a single document accordion render against the configured budgets. Once a budget
+ * is exhausted the render stops and displays the accordions selected so far.
+ */
+public class RenderBudget
+{
+    private final int maxQueryPages;
+
+    private final int maxDocuments;
+
+    private final long deadline;
+
+    private int queryPages;
+
+    private int documents;
+
+    private boolean exhausted;
+
+    /**
+     * @param maxQueryPages the maximum number of query pages, zero or negative for no limit
+     * @param maxDocuments the maximum number of documents loaded, zero or negative for no limit
+     * @param timeout the maximum render time in milliseconds, zero or negative for no limit
+     */
+    public RenderBudget(int maxQueryPages, int maxDocuments, long timeout)
+    {
+        this.maxQueryPages = maxQueryPages;
+        this.maxDocuments = maxDocuments;
+        this.deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return {@code true} if one more query page can be executed, {@code false} if the budget is exhausted
+     */
+    public boolean acquireQueryPage()
+    {
+        if (isOverDeadline() || (this.maxQueryPages > 0 && this.queryPages >= this.maxQueryPages)) {
+            this.exhausted = true;
+        } else {
+            this.queryPages++;
+        }
+        return !this.exhausted;
+    }
+
+    /**
+     * @return {@code true} if one more document can be loaded, {@code false} if the budget is exhausted
+     */
+    public boolean acquireDocument()
+    {
+        if (isOverDeadline() || (this.maxDocuments > 0 && this.documents >= this.maxDocuments)) {
+            this.exhausted = true;
+        } else {
+            this.documents++;
+        }
+        return !this.exhausted;
+    }
+
+    /**
+     * @return {@code false} if the render time is over, in which case the budget is exhausted
+     */
+    public boolean checkDeadline()
+    {
+        if (isOverDeadline()) {
+            this.exhausted = true;
+        }
+        return !this.exhausted;
+    }
+
+    /**
+     * @return {@code true} if a budget was hit, meaning more accordions are available than the ones rendered
+     */
+    public boolean isExhausted()
+    {
+        return this.exhausted;
+    }
+
+    private boolean isOverDeadline()
+    {
+        return System.currentTimeMillis() > this.deadline;
+    }
+}
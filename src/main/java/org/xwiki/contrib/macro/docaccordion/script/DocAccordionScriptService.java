@@ -0,0 +1,75 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.macro.docaccordion.script;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.macro.docaccordion.internal.DocAccordionSnapshotStore;
+import org.xwiki.script.service.ScriptService;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+
+/**
+ * Script service used by the templates of the {@link org.xwiki.contrib.macro.docaccordion.internal.DocAccordionMacro}
+ * Macro.
+ */
+@Component
+@Named("docaccordion")
+@Singleton
+public class DocAccordionScriptService implements ScriptService
+{
+    @Inject
+    private DocAccordionSnapshotStore snapshotStore;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    /**
+     * @return {@code true} if the current request was generated by an accordion using snapshots for the current
+     *         document
+     */
+    public boolean isPanelAllowed()
+    {
+        XWikiContext xcontext = this.contextProvider.get();
+        return xcontext.getRequest() != null
+            && this.snapshotStore.isValidToken(xcontext.getDoc().getDocumentReference(),
+                xcontext.getRequest().getParameter(DocAccordionSnapshotStore.TOKEN_PARAMETER));
+    }
+
+    /**
+     * @return the rendered content of the current document in the current locale, read from its snapshot when
+     *         available, or {@code null} if the current request was not generated by an accordion using snapshots
+     * @throws XWikiException if the document fails to be rendered
+     */
+    public String getPanelContent() throws XWikiException
+    {
+        if (!isPanelAllowed()) {
+            return null;
+        }
+
+        XWikiContext xcontext = this.contextProvider.get();
+        return this.snapshotStore.getRenderedContent(xcontext.getDoc().getTranslatedDocument(xcontext), xcontext);
+    }
+}
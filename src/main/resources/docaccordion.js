@@ -4,21 +4,151 @@ require(['jquery', 'bootstrap'], function($){
       var accordionBody = $(".panel-body .xwiki-accordion-content", accordionElement );
       accordionBody.addClass("loading");
 	  accordionBody.html("&nbsp;");
-      var docURL = accordionElement.parent().find("a").attr("rel");
+      var link = accordionElement.parent().find("a").first();
+      var docURL = link.attr("rel");
+      // Nested spaces without a home page have no content, only children
+      if (!docURL) {
+        accordionBody.removeClass("loading").empty();
+        accordionElement.addClass("content-already-loaded");
+        loadChildren(accordionBody, link.attr("data-children"));
+        return;
+      }
       accordionBody.load( docURL , function(){
         accordionBody.removeClass("loading");
         accordionElement.addClass("content-already-loaded");
-        $(".xwiki-accordion-footer", accordionElement).show();
+        $(".xwiki-accordion-footer", accordionElement).first().show();
+        loadChildren(accordionBody, link.attr("data-children"));
+      });
+    }
+  }
+
+  // Load the nested accordion level listing the children of the expanded page, only once. The level is added after
+  // the footer of the expanded page so that the footer stays next to the page content.
+  function loadChildren (accordionBody, childrenURL) {
+    if (childrenURL) {
+      var children = $('<div class="xwiki-accordion-children loading"/>').html("&nbsp;");
+      accordionBody.parent().append(children);
+      children.load(childrenURL, function() {
+        children.removeClass("loading");
+        initFilters(children);
       });
     }
   }
 
-  // Initialize accordions
-  $('.xwiki-accordion .collapse').on('show.bs.collapse', function () {
-    loadAccordion($(this));
+  // Split the terms on the same characters as the server side index, i.e. anything but a letter or a digit. Fall back on
+  // the Latin letters for browsers not supporting the Unicode property escapes.
+  var termsSeparator;
+  try {
+    termsSeparator = new RegExp("[^\\p{L}\\p{N}]+", "u");
+  } catch (e) {
+    termsSeparator = /[^0-9a-z\u00c0-\u00d6\u00d8-\u00f6\u00f8-\u024f]+/;
+  }
+
+  function normalize (text) {
+    text = text.toLowerCase();
+    // Remove the accents the same way the terms are indexed on the server side
+    if (text.normalize) {
+      text = text.normalize("NFD").replace(/[\u0300-\u036f]/g, "");
+    }
+    return text;
+  }
+
+  // Build a sorted term index for the accordion items so that a prefix lookup is a binary search
+  function buildFilterIndex (panels) {
+    var index = [];
+    panels.each(function(panelIndex) {
+      var terms = ($(this).attr("data-terms") || "").split(" ");
+      for (var i = 0; i < terms.length; i++) {
+        if (terms[i]) {
+          index.push({term: terms[i], panel: panelIndex});
+        }
+      }
+    });
+    index.sort(function(a, b) {
+      return a.term < b.term ? -1 : (a.term > b.term ? 1 : 0);
+    });
+    return index;
+  }
+
+  // Return the set of panels having at least one term starting with the given prefix
+  function findPanels (index, prefix) {
+    var low = 0, high = index.length;
+    while (low < high) {
+      var middle = (low + high) >>> 1;
+      if (index[middle].term < prefix) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    var matches = {};
+    for (var i = low; i < index.length && index[i].term.lastIndexOf(prefix, 0) === 0; i++) {
+      matches[index[i].panel] = true;
+    }
+    return matches;
+  }
+
+  function initFilter (accordion) {
+    var panels = accordion.children(".panel");
+    var index = buildFilterIndex(panels);
+    var input = $('<input type="text" class="form-control xwiki-accordion-filter-input"/>')
+      .attr("placeholder", accordion.attr("data-filter-placeholder"));
+    var noResults = $('<p class="noitems xwiki-accordion-filter-noresults"/>')
+      .text(accordion.attr("data-filter-noresults")).hide();
+    accordion.before($('<div class="xwiki-accordion-filter"/>').append(input)).after(noResults);
+
+    var timeout;
+    input.on("input", function() {
+      clearTimeout(timeout);
+      timeout = setTimeout(function() {
+        var prefixes = normalize(input.val()).split(termsSeparator).filter(function(prefix) {
+          return prefix.length > 0;
+        });
+        var matches = null;
+        // Each typed word must be the prefix of one of the item terms
+        for (var i = 0; i < prefixes.length; i++) {
+          var prefixMatches = findPanels(index, prefixes[i]);
+          if (matches !== null) {
+            for (var panelIndex in matches) {
+              if (!prefixMatches[panelIndex]) {
+                delete matches[panelIndex];
+              }
+            }
+          } else {
+            matches = prefixMatches;
+          }
+        }
+        var visible = 0;
+        panels.each(function(panelIndex) {
+          var match = matches === null || matches[panelIndex] === true;
+          $(this).toggleClass("xwiki-accordion-filtered", !match);
+          visible += match ? 1 : 0;
+        });
+        noResults.toggle(visible === 0);
+      }, 200);
+    });
+  }
+
+  function initFilters (container) {
+    $('.xwiki-accordion[data-filter="true"]', container).each(function() {
+      initFilter($(this));
+    });
+  }
+
+  // Initialize accordions, including the nested ones loaded later. Only the accordion panels are handled, not the
+  // collapsible elements of their content, and since the collapse events bubble up to the parent accordions only the
+  // panel that triggered the event is handled.
+  var accordionPanels = '.xwiki-accordion > .panel > .panel-collapse';
+  $(document).on('show.bs.collapse', accordionPanels, function (event) {
+    if (event.target === this) {
+      loadAccordion($(this));
+    }
   });
 
-  $('.xwiki-accordion .collapse').on('hide.bs.collapse', function () {
+  $(document).on('hide.bs.collapse', accordionPanels, function (event) {
+    if (event.target !== this) {
+      return;
+    }
     var panel = $(this);
     var scrollTop = Math.max( $("html").scrollTop(), $("body").scrollTop());
     if (scrollTop > panel.offset().top) {
@@ -27,6 +157,9 @@ require(['jquery', 'bootstrap'], function($){
     panel.collapse({toggle: true});
   });
 
+  // Initialize the filters
+  initFilters(document);
+
   // Load the first accordions
   $(".panel-heading.openFirstAccordion a").click();
-});
\ No newline at end of file
+});